@@ -0,0 +1,227 @@
+package com.rbccm.database.tools;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link OutputFile} wrapper that checksums every byte as the Parquet writer emits it, so the
+ * finished file never has to be re-read to be verified. Values are Base64 encoded in the same
+ * form S3 expects in its x-amz-checksum-* headers.
+ */
+public class ChecksumOutputFile implements OutputFile {
+    public static final String SIDECAR_SUFFIX = ".checksum";
+
+    private final OutputFile delegate;
+    private final Algorithm algorithm;
+    private Digest digest;
+
+    public enum Algorithm {
+        CRC32C,
+        SHA256;
+
+        public Digest newDigest() {
+            return this == CRC32C ? new Crc32cDigest() : new Sha256Digest();
+        }
+    }
+
+    public ChecksumOutputFile(OutputFile delegate, Algorithm algorithm) {
+        this.delegate = delegate;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) throws IOException {
+        return wrap(delegate.create(blockSizeHint));
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+        return wrap(delegate.createOrOverwrite(blockSizeHint));
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return delegate.supportsBlockSize();
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return delegate.defaultBlockSize();
+    }
+
+    @Override
+    public String getPath() {
+        return delegate.getPath();
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /** Returns the Base64 checksum of everything written; only meaningful once the writer is closed. */
+    public String getChecksum() {
+        if (digest == null) {
+            throw new IllegalStateException("No output has been created for " + delegate.getPath());
+        }
+        return digest.toBase64();
+    }
+
+    private PositionOutputStream wrap(PositionOutputStream out) {
+        Digest streamDigest = algorithm.newDigest();
+        this.digest = streamDigest;
+        return new PositionOutputStream() {
+            @Override
+            public long getPos() throws IOException {
+                return out.getPos();
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                streamDigest.update(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                streamDigest.update(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    public static Path sidecarPath(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    public static void writeSidecar(Path dataFile, Algorithm algorithm, String checksum) throws IOException {
+        Files.writeString(sidecarPath(dataFile), algorithm.name() + ":" + checksum + "\n", StandardCharsets.UTF_8);
+    }
+
+    /** Reads the checksum stored next to {@code dataFile}, or returns null if there is none. */
+    public static StoredChecksum readSidecar(Path dataFile) throws IOException {
+        Path sidecar = sidecarPath(dataFile);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        String content = Files.readString(sidecar, StandardCharsets.UTF_8).trim();
+        int separator = content.indexOf(':');
+        if (separator < 0) {
+            throw new IOException("Malformed checksum file: " + sidecar);
+        }
+        try {
+            return new StoredChecksum(Algorithm.valueOf(content.substring(0, separator)), content.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported checksum algorithm in " + sidecar + ": " + content, e);
+        }
+    }
+
+    public static class StoredChecksum {
+        private final Algorithm algorithm;
+        private final String value;
+
+        public StoredChecksum(Algorithm algorithm, String value) {
+            this.algorithm = algorithm;
+            this.value = value;
+        }
+
+        public Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    public abstract static class Digest {
+        public abstract void update(int b);
+
+        public abstract void update(byte[] b, int off, int len);
+
+        public abstract void update(ByteBuffer buffer);
+
+        public abstract String toBase64();
+    }
+
+    private static class Crc32cDigest extends Digest {
+        private final CRC32C crc = new CRC32C();
+
+        @Override
+        public void update(int b) {
+            crc.update(b);
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            crc.update(buffer);
+        }
+
+        @Override
+        public String toBase64() {
+            // S3 expects the big-endian 4-byte CRC value
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+        }
+    }
+
+    private static class Sha256Digest extends Digest {
+        private final MessageDigest sha;
+        private String result;
+
+        Sha256Digest() {
+            try {
+                sha = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        @Override
+        public void update(int b) {
+            sha.update((byte) b);
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            sha.update(b, off, len);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            sha.update(buffer);
+        }
+
+        @Override
+        public String toBase64() {
+            // MessageDigest.digest() resets the state, so keep the first result
+            if (result == null) {
+                result = Base64.getEncoder().encodeToString(sha.digest());
+            }
+            return result;
+        }
+    }
+}
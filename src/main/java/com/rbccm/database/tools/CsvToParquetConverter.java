@@ -24,7 +24,6 @@ import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -48,12 +47,22 @@ public class CsvToParquetConverter {
     private final Schema avroSchema;
     private final int rowGroupSize;
     private final int numThreads;
+    private final ChecksumOutputFile.Algorithm checksumAlgorithm;
 
     public CsvToParquetConverter(MessageType parquetSchema, int rowGroupSize, int numThreads) {
+        this(parquetSchema, rowGroupSize, numThreads, ChecksumOutputFile.Algorithm.CRC32C);
+    }
+
+    /**
+     * @param checksumAlgorithm algorithm for the checksum stored next to each Parquet file, or null to skip it
+     */
+    public CsvToParquetConverter(MessageType parquetSchema, int rowGroupSize, int numThreads,
+                                 ChecksumOutputFile.Algorithm checksumAlgorithm) {
         this.parquetSchema = parquetSchema;
         this.avroSchema = convertToAvroSchema(parquetSchema);
         this.rowGroupSize = rowGroupSize;
         this.numThreads = numThreads;
+        this.checksumAlgorithm = checksumAlgorithm;
     }
 
     private Schema convertToAvroSchema(MessageType parquetSchema) {
@@ -145,8 +154,14 @@ public class CsvToParquetConverter {
         logger.debug("Converting {} to {}", csvFilePath, parquetFilePath);
         String fileName = Path.of(csvFilePath).getFileName().toString().replace(".csv", "");
         Path tempParquetPath = Files.createTempFile("parquet_" + fileName + "_", ".parquet");
+        OutputFile outputFile = new LocalOutputFile(tempParquetPath);
+        ChecksumOutputFile checksumFile = null;
+        if (checksumAlgorithm != null) {
+            checksumFile = new ChecksumOutputFile(outputFile, checksumAlgorithm);
+            outputFile = checksumFile;
+        }
         try (CSVReader csvReader = new CSVReader(new FileReader(csvFilePath));
-             ParquetWriter<GenericRecord> writer = buildParquetWriter(tempParquetPath.toString())) {
+             ParquetWriter<GenericRecord> writer = buildParquetWriter(outputFile)) {
 
             csvReader.skip(1); // Skip header
             String[] record;
@@ -216,14 +231,22 @@ public class CsvToParquetConverter {
             }
         }
 
-        Files.move(tempParquetPath, Path.of(parquetFilePath), StandardCopyOption.REPLACE_EXISTING);
+        Path finalPath = Path.of(parquetFilePath);
+        // Drop the previous run's checksum first so a failure before the new one is written
+        // leaves the file without a checksum rather than with a wrong one
+        Files.deleteIfExists(ChecksumOutputFile.sidecarPath(finalPath));
+        Files.move(tempParquetPath, finalPath, StandardCopyOption.REPLACE_EXISTING);
         logger.debug("Moved temp file to final destination: {}", parquetFilePath);
+
+        if (checksumFile != null) {
+            ChecksumOutputFile.writeSidecar(finalPath, checksumAlgorithm, checksumFile.getChecksum());
+            logger.debug("{} checksum of {}: {}", checksumAlgorithm, parquetFilePath, checksumFile.getChecksum());
+        }
     }
 
-    private ParquetWriter<GenericRecord> buildParquetWriter(String outputPath) throws IOException {
+    private ParquetWriter<GenericRecord> buildParquetWriter(OutputFile outputFile) throws IOException {
         Configuration conf = new Configuration();
         conf.setBoolean("fs.file.impl.disable.cache", true);
-        OutputFile outputFile = new LocalOutputFile(Paths.get(outputPath));
         return AvroParquetWriter.<GenericRecord>builder(outputFile)
                 .withSchema(avroSchema)
                 .withCompressionCodec(CompressionCodecName.SNAPPY)
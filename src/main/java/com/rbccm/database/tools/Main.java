@@ -41,7 +41,8 @@ public class Main {
             logger.info("Found CSV files: {}", csvFiles);
 
             // Convert CSV files to Parquet
-            CsvToParquetConverter converter = new CsvToParquetConverter(schema, 128 * 1024 * 1024, 4);
+            CsvToParquetConverter converter = new CsvToParquetConverter(schema, 128 * 1024 * 1024, 4,
+                    parseChecksumAlgorithm(config.getProperty("checksumAlgorithm", "CRC32C")));
             String outputDir = config.getProperty("ParquetFilePath");
             if (outputDir == null) {
                 throw new IOException("Missing ParquetFilePath in application.properties");
@@ -82,6 +83,17 @@ public class Main {
         }
     }
 
+    private static ChecksumOutputFile.Algorithm parseChecksumAlgorithm(String value) throws IOException {
+        if (value.trim().equalsIgnoreCase("NONE")) {
+            return null;
+        }
+        try {
+            return ChecksumOutputFile.Algorithm.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid checksumAlgorithm in application.properties: " + value, e);
+        }
+    }
+
     private static Properties loadConfig() throws IOException {
         Properties config = new Properties();
         try (InputStream input = Main.class.getClassLoader().getResourceAsStream("application.properties")) {
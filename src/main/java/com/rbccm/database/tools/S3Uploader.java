@@ -7,28 +7,85 @@ import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.Part;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 import software.amazon.awssdk.core.sync.RequestBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 public class S3Uploader implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(S3Uploader.class);
+    private static final long DEFAULT_MULTIPART_THRESHOLD = 64L * 1024 * 1024;
+    private static final long DEFAULT_PART_SIZE = 16L * 1024 * 1024;
+    private static final String DEFAULT_JOURNAL_PATH = "output/s3-upload-journal.json";
+    private static final long DEFAULT_ORPHAN_MIN_AGE_HOURS = 24;
+    private static final long DEFAULT_UPLOAD_TIMEOUT_SECONDS = 3600;
+    private static final int READ_CHUNK_SIZE = 1024 * 1024;
+    private static final long MIB = 1024L * 1024;
+    private static final long MIN_PART_SIZE = 5 * MIB;
+    // S3 allows parts up to 5 GiB, but each part is buffered in a single heap ByteBuffer
+    private static final long MAX_PART_SIZE = 2047 * MIB;
+    private static final String PART_CONTENT_TYPE = "application/octet-stream";
+    private static final int MAX_PARTS = 10_000;
     private final S3Client s3Client;
     private final int numThreads;
     private final ExecutorService executor;
+    private final long multipartThreshold;
+    private final long partSize;
+    private final long maxPartSize;
+    private final Duration orphanMinAge;
+    private final Duration uploadTimeout;
+    private final UploadJournal journal;
 
     public S3Uploader(int numThreads, Properties config) {
         this.numThreads = numThreads;
         this.executor = Executors.newFixedThreadPool(numThreads);
+        this.multipartThreshold = parseSize(config, "s3.multipartThreshold", DEFAULT_MULTIPART_THRESHOLD);
+        this.partSize = parseSize(config, "s3.partSize", DEFAULT_PART_SIZE);
+        // Every upload thread holds one part in memory, so keep all of them within half the heap
+        this.maxPartSize = Math.max(MIN_PART_SIZE,
+                Math.min(MAX_PART_SIZE, Runtime.getRuntime().maxMemory() / 2 / numThreads / MIB * MIB));
+        if (partSize < MIN_PART_SIZE || partSize > maxPartSize) {
+            throw new IllegalStateException("s3.partSize must be between " + MIN_PART_SIZE + " and " + maxPartSize
+                    + " bytes in application.properties with " + numThreads + " upload threads: " + partSize);
+        }
+        this.orphanMinAge = Duration.ofHours(parseSize(config, "s3.orphanMinAgeHours", DEFAULT_ORPHAN_MIN_AGE_HOURS));
+        this.uploadTimeout = Duration.ofSeconds(parseSize(config, "s3.uploadTimeoutSeconds", DEFAULT_UPLOAD_TIMEOUT_SECONDS));
+        this.journal = new UploadJournal(Path.of(config.getProperty("s3.journalPath", DEFAULT_JOURNAL_PATH)));
 
         String accessKey = config.getProperty("s3.accessKey");
         String secretKey = config.getProperty("s3.secretKey");
@@ -48,9 +105,26 @@ public class S3Uploader implements AutoCloseable {
                 .build();
     }
 
+    private static long parseSize(Properties config, String name, long defaultValue) {
+        String value = config.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long size = Long.parseLong(value.trim());
+            if (size <= 0) {
+                throw new IllegalStateException(name + " must be positive in application.properties: " + value);
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid " + name + " in application.properties: " + value, e);
+        }
+    }
+
     public void uploadToS3(String bucketName, String prefix, List<String> filePaths) throws IOException, InterruptedException {
         logger.info("Starting upload of {} files to S3 bucket: {}/{}", filePaths.size(), bucketName, prefix);
         AtomicBoolean hasErrors = new AtomicBoolean(false);
+        abortOrphanedUploads(bucketName, prefix, filePaths);
         for (String filePath : filePaths) {
             executor.submit(() -> {
                 try {
@@ -64,9 +138,14 @@ public class S3Uploader implements AutoCloseable {
         }
 
         executor.shutdown();
-        if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+        if (!executor.awaitTermination(uploadTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            // Unfinished uploads stay in the journal; failing the run makes sure they get resumed
             logger.warn("Upload tasks did not complete within timeout");
+            hasErrors.set(true);
             executor.shutdownNow();
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Upload tasks did not stop after being interrupted");
+            }
         }
 
         if (hasErrors.get()) {
@@ -79,10 +158,21 @@ public class S3Uploader implements AutoCloseable {
     private void uploadSingleFile(String bucketName, String prefix, String filePath) throws IOException {
         Path path = Path.of(filePath);
         String key = prefix + "/" + path.getFileName();
-        PutObjectRequest request = PutObjectRequest.builder()
+        ChecksumOutputFile.StoredChecksum checksum = ChecksumOutputFile.readSidecar(path);
+        if (Files.size(path) >= multipartThreshold) {
+            uploadMultipart(bucketName, key, path, checksum);
+            return;
+        }
+        PutObjectRequest.Builder requestBuilder = PutObjectRequest.builder()
                 .bucket(bucketName)
-                .key(key)
-                .build();
+                .key(key);
+        // The checksum was computed while the file was written, so S3 verifies it without a second read
+        if (checksum != null && checksum.getAlgorithm() == ChecksumOutputFile.Algorithm.CRC32C) {
+            requestBuilder.checksumCRC32C(checksum.getValue());
+        } else if (checksum != null) {
+            requestBuilder.checksumSHA256(checksum.getValue());
+        }
+        PutObjectRequest request = requestBuilder.build();
 
         try {
             s3Client.putObject(request, RequestBody.fromFile(path));
@@ -92,6 +182,299 @@ public class S3Uploader implements AutoCloseable {
         }
     }
 
+    private void abortOrphanedUploads(String bucketName, String prefix, List<String> filePaths) throws IOException {
+        for (Map.Entry<String, UploadJournal.Entry> pending : journal.snapshot().entrySet()) {
+            Path path = Path.of(pending.getKey());
+            if (Files.exists(path) && matchesFile(pending.getValue(), path)) {
+                continue;
+            }
+            logger.info("Source file {} changed or disappeared, aborting its multipart upload", path);
+            abortUpload(pending.getKey(), pending.getValue());
+        }
+
+        // Only sweep keys this batch is about to write, and only uploads old enough that no concurrent
+        // writer can still be working on them
+        Set<String> batchKeys = filePaths.stream()
+                .map(filePath -> prefix + "/" + Path.of(filePath).getFileName())
+                .collect(Collectors.toSet());
+        Set<String> journaledUploadIds = journal.snapshot().values().stream()
+                .map(entry -> entry.uploadId)
+                .collect(Collectors.toSet());
+        Instant cutoff = Instant.now().minus(orphanMinAge);
+        try {
+            String keyMarker = null;
+            String uploadIdMarker = null;
+            ListMultipartUploadsResponse response;
+            do {
+                response = s3Client.listMultipartUploads(ListMultipartUploadsRequest.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix + "/")
+                        .keyMarker(keyMarker)
+                        .uploadIdMarker(uploadIdMarker)
+                        .build());
+                for (MultipartUpload upload : response.uploads()) {
+                    if (batchKeys.contains(upload.key()) && !journaledUploadIds.contains(upload.uploadId())
+                            && upload.initiated() != null && upload.initiated().isBefore(cutoff)) {
+                        logger.info("Aborting untracked multipart upload {} for s3://{}/{}", upload.uploadId(), bucketName, upload.key());
+                        abortOnS3(bucketName, upload.key(), upload.uploadId());
+                    }
+                }
+                keyMarker = response.nextKeyMarker();
+                uploadIdMarker = response.nextUploadIdMarker();
+            } while (Boolean.TRUE.equals(response.isTruncated()));
+        } catch (Exception e) {
+            logger.warn("Failed to list multipart uploads in s3://{}/{}: {}", bucketName, prefix, e.getMessage());
+        }
+    }
+
+    private void uploadMultipart(String bucketName, String key, Path path,
+                                 ChecksumOutputFile.StoredChecksum checksum) throws IOException {
+        ChecksumOutputFile.Algorithm checksumAlgorithm = checksum == null ? null : checksum.getAlgorithm();
+        ChecksumOutputFile.Digest fileDigest = checksumAlgorithm == null ? null : checksumAlgorithm.newDigest();
+        String journalKey = path.toAbsolutePath().toString();
+        long fileSize = Files.size(path);
+        long filePartSize = partSizeFor(fileSize);
+        UploadJournal.Entry entry = resumeUpload(journalKey, bucketName, key, path, filePartSize, checksumAlgorithm);
+        if (entry == null) {
+            String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .checksumAlgorithm(toSdkAlgorithm(checksumAlgorithm))
+                    .build()).uploadId();
+            entry = new UploadJournal.Entry(bucketName, key, uploadId, fileSize,
+                    fingerprint(path), filePartSize, checksumAlgorithm);
+            journal.put(journalKey, entry);
+            logger.debug("Started multipart upload {} for {}", uploadId, path);
+        }
+
+        int partCount = (int) ((fileSize + filePartSize - 1) / filePartSize);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Upload of " + path + " interrupted at part " + partNumber);
+                }
+                long offset = (partNumber - 1) * filePartSize;
+                long length = Math.min(filePartSize, fileSize - offset);
+                boolean digested = false;
+                if (entry.parts.containsKey(partNumber)) {
+                    if (checksumAlgorithm == null) {
+                        continue;
+                    }
+                    // A part already on S3 is only kept if it matches the local file
+                    ChecksumOutputFile.Digest localPart = checksumAlgorithm.newDigest();
+                    digestRange(channel, offset, length, localPart, fileDigest);
+                    if (localPart.toBase64().equals(entry.partChecksums.get(partNumber))) {
+                        continue;
+                    }
+                    logger.warn("Part {} of {} on S3 does not match the local file, re-sending it", partNumber, path);
+                    entry.parts.remove(partNumber);
+                    entry.partChecksums.remove(partNumber);
+                    digested = true;
+                }
+                ByteBuffer buffer = readPart(channel, offset, (int) length);
+                if (fileDigest != null && !digested) {
+                    fileDigest.update(buffer.duplicate());
+                }
+                UploadPartRequest.Builder partRequest = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(entry.uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) buffer.remaining());
+                String partChecksum = null;
+                if (checksumAlgorithm != null) {
+                    ChecksumOutputFile.Digest digest = checksumAlgorithm.newDigest();
+                    digest.update(buffer.duplicate());
+                    partChecksum = digest.toBase64();
+                    if (checksumAlgorithm == ChecksumOutputFile.Algorithm.CRC32C) {
+                        partRequest.checksumCRC32C(partChecksum);
+                    } else {
+                        partRequest.checksumSHA256(partChecksum);
+                    }
+                }
+                // fromByteBuffer would copy the whole part; streaming from the backing array avoids that
+                UploadPartResponse response = s3Client.uploadPart(partRequest.build(), RequestBody.fromContentProvider(
+                        () -> new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()),
+                        buffer.remaining(), PART_CONTENT_TYPE));
+                entry.parts.put(partNumber, response.eTag());
+                if (partChecksum != null) {
+                    entry.partChecksums.put(partNumber, partChecksum);
+                }
+                journal.recordPart(journalKey, partNumber, response.eTag(), partChecksum);
+                logger.debug("Uploaded part {}/{} of {}", partNumber, partCount, path);
+            }
+        }
+
+        if (fileDigest != null && !fileDigest.toBase64().equals(checksum.getValue())) {
+            abortUpload(journalKey, entry);
+            throw new IOException(checksumAlgorithm + " of " + path + " is " + fileDigest.toBase64()
+                    + " but " + checksum.getValue() + " was recorded when it was written");
+        }
+
+        List<CompletedPart> completedParts = new ArrayList<>();
+        for (Map.Entry<Integer, String> part : entry.parts.entrySet()) {
+            CompletedPart.Builder completedPart = CompletedPart.builder()
+                    .partNumber(part.getKey())
+                    .eTag(part.getValue());
+            String partChecksum = entry.partChecksums.get(part.getKey());
+            if (checksumAlgorithm == ChecksumOutputFile.Algorithm.CRC32C) {
+                completedPart.checksumCRC32C(partChecksum);
+            } else if (checksumAlgorithm == ChecksumOutputFile.Algorithm.SHA256) {
+                completedPart.checksumSHA256(partChecksum);
+            }
+            completedParts.add(completedPart.build());
+        }
+        s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(entry.uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build());
+        journal.remove(journalKey);
+        logger.debug("Completed multipart upload of {} to s3://{}/{} in {} parts", path, bucketName, key, partCount);
+    }
+
+    private UploadJournal.Entry resumeUpload(String journalKey, String bucketName, String key, Path path, long filePartSize,
+                                             ChecksumOutputFile.Algorithm checksumAlgorithm) throws IOException {
+        UploadJournal.Entry entry = journal.get(journalKey);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.bucket.equals(bucketName) || !entry.key.equals(key) || entry.partSize != filePartSize
+                || entry.checksumAlgorithm != checksumAlgorithm || !matchesFile(entry, path)) {
+            logger.info("Journaled upload for {} does not match this run, starting over", path);
+            abortUpload(journalKey, entry);
+            return null;
+        }
+
+        UploadJournal.Entry resumed = new UploadJournal.Entry(entry.bucket, entry.key, entry.uploadId,
+                entry.fileSize, entry.fingerprint, entry.partSize, entry.checksumAlgorithm);
+        try {
+            Integer marker = null;
+            ListPartsResponse response;
+            do {
+                response = s3Client.listParts(ListPartsRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(entry.uploadId)
+                        .partNumberMarker(marker)
+                        .build());
+                for (Part part : response.parts()) {
+                    long offset = (part.partNumber() - 1) * filePartSize;
+                    if (part.size() == null || part.size() != Math.min(filePartSize, entry.fileSize - offset)) {
+                        continue;
+                    }
+                    String partChecksum = checksumAlgorithm == ChecksumOutputFile.Algorithm.CRC32C ? part.checksumCRC32C()
+                            : checksumAlgorithm == ChecksumOutputFile.Algorithm.SHA256 ? part.checksumSHA256() : null;
+                    if (checksumAlgorithm != null && partChecksum == null) {
+                        continue;
+                    }
+                    resumed.parts.put(part.partNumber(), part.eTag());
+                    if (partChecksum != null) {
+                        resumed.partChecksums.put(part.partNumber(), partChecksum);
+                    }
+                }
+                marker = response.nextPartNumberMarker();
+            } while (Boolean.TRUE.equals(response.isTruncated()));
+        } catch (NoSuchUploadException e) {
+            logger.info("Multipart upload {} for {} no longer exists on S3, starting over", entry.uploadId, path);
+            journal.remove(journalKey);
+            return null;
+        }
+
+        journal.put(journalKey, resumed);
+        logger.info("Resuming multipart upload of {} with {} parts already uploaded", path, resumed.parts.size());
+        return resumed;
+    }
+
+    long partSizeFor(long fileSize) throws IOException {
+        long minimum = (fileSize + MAX_PARTS - 1) / MAX_PARTS;
+        if (minimum <= partSize) {
+            return partSize;
+        }
+        long raised = (minimum + MIB - 1) / MIB * MIB;
+        if (raised > maxPartSize) {
+            throw new IOException("File of " + fileSize + " bytes exceeds the largest supported multipart upload");
+        }
+        return raised;
+    }
+
+    private static ChecksumAlgorithm toSdkAlgorithm(ChecksumOutputFile.Algorithm algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        return algorithm == ChecksumOutputFile.Algorithm.CRC32C ? ChecksumAlgorithm.CRC32_C : ChecksumAlgorithm.SHA256;
+    }
+
+    private boolean matchesFile(UploadJournal.Entry entry, Path path) throws IOException {
+        return Files.size(path) == entry.fileSize && fingerprint(path).equals(entry.fingerprint);
+    }
+
+    static String fingerprint(Path path) throws IOException {
+        ChecksumOutputFile.StoredChecksum checksum = ChecksumOutputFile.readSidecar(path);
+        if (checksum != null) {
+            return checksum.getAlgorithm() + ":" + checksum.getValue();
+        }
+        ChecksumOutputFile.Digest digest = ChecksumOutputFile.Algorithm.CRC32C.newDigest();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            digestRange(channel, 0, channel.size(), digest);
+        }
+        return "FILE-CRC32C:" + digest.toBase64();
+    }
+
+    private void abortUpload(String journalKey, UploadJournal.Entry entry) throws IOException {
+        // Keep the journal entry on failure so the abort is retried on the next run
+        if (abortOnS3(entry.bucket, entry.key, entry.uploadId)) {
+            journal.remove(journalKey);
+        }
+    }
+
+    private boolean abortOnS3(String bucketName, String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (NoSuchUploadException e) {
+            logger.debug("Multipart upload {} already gone from S3", uploadId);
+        } catch (Exception e) {
+            logger.warn("Failed to abort multipart upload {} for s3://{}/{}: {}", uploadId, bucketName, key, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer readPart(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at offset " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void digestRange(FileChannel channel, long offset, long length,
+                                    ChecksumOutputFile.Digest... digests) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(READ_CHUNK_SIZE, length));
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            chunk.clear().limit((int) Math.min(chunk.capacity(), end - position));
+            int read = channel.read(chunk, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            chunk.flip();
+            for (ChecksumOutputFile.Digest digest : digests) {
+                digest.update(chunk.duplicate());
+            }
+            position += read;
+        }
+    }
+
     @Override
     public void close() {
         try {
@@ -0,0 +1,127 @@
+package com.rbccm.database.tools;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Local checkpoint of in-progress S3 multipart uploads, keyed by the absolute path of the source file.
+ * The journal is rewritten after every completed part so a restarted process can resume from the
+ * first missing part instead of re-sending the whole file.
+ */
+public class UploadJournal {
+    private static final Logger logger = LoggerFactory.getLogger(UploadJournal.class);
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path journalPath;
+    private final Map<String, Entry> entries;
+
+    public UploadJournal(Path journalPath) {
+        this.journalPath = journalPath;
+        this.entries = load(journalPath);
+    }
+
+    private static Map<String, Entry> load(Path journalPath) {
+        if (!Files.exists(journalPath)) {
+            return new LinkedHashMap<>();
+        }
+        try {
+            Map<String, Entry> loaded = mapper.readValue(journalPath.toFile(), new TypeReference<LinkedHashMap<String, Entry>>() {});
+            logger.info("Loaded {} pending multipart uploads from journal: {}", loaded.size(), journalPath);
+            return loaded;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable upload journal {}: {}", journalPath, e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    public synchronized Entry get(String filePath) {
+        Entry entry = entries.get(filePath);
+        return entry == null ? null : entry.copy();
+    }
+
+    public synchronized Map<String, Entry> snapshot() {
+        Map<String, Entry> copy = new LinkedHashMap<>();
+        entries.forEach((filePath, entry) -> copy.put(filePath, entry.copy()));
+        return copy;
+    }
+
+    public synchronized void put(String filePath, Entry entry) throws IOException {
+        entries.put(filePath, entry.copy());
+        persist();
+    }
+
+    public synchronized void recordPart(String filePath, int partNumber, String eTag, String checksum) throws IOException {
+        Entry entry = entries.get(filePath);
+        if (entry == null) {
+            throw new IllegalStateException("No multipart upload in journal for " + filePath);
+        }
+        entry.parts.put(partNumber, eTag);
+        if (checksum != null) {
+            entry.partChecksums.put(partNumber, checksum);
+        }
+        persist();
+    }
+
+    public synchronized void remove(String filePath) throws IOException {
+        if (entries.remove(filePath) != null) {
+            persist();
+        }
+    }
+
+    private void persist() throws IOException {
+        Path parent = journalPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tempPath = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(tempPath.toFile(), entries);
+        Files.move(tempPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Persisted {} pending multipart uploads to {}", entries.size(), journalPath);
+    }
+
+    public static class Entry {
+        public String bucket;
+        public String key;
+        public String uploadId;
+        public long fileSize;
+        public String fingerprint;
+        public long partSize;
+        public ChecksumOutputFile.Algorithm checksumAlgorithm;
+        public SortedMap<Integer, String> parts = new TreeMap<>();
+        public SortedMap<Integer, String> partChecksums = new TreeMap<>();
+
+        public Entry() {
+        }
+
+        public Entry(String bucket, String key, String uploadId, long fileSize, String fingerprint, long partSize,
+                     ChecksumOutputFile.Algorithm checksumAlgorithm) {
+            this.bucket = bucket;
+            this.key = key;
+            this.uploadId = uploadId;
+            this.fileSize = fileSize;
+            this.fingerprint = fingerprint;
+            this.partSize = partSize;
+            this.checksumAlgorithm = checksumAlgorithm;
+        }
+
+        Entry copy() {
+            Entry copy = new Entry(bucket, key, uploadId, fileSize, fingerprint, partSize, checksumAlgorithm);
+            copy.parts.putAll(parts);
+            copy.partChecksums.putAll(partChecksums);
+            return copy;
+        }
+    }
+}
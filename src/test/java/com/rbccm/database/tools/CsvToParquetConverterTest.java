@@ -2,7 +2,6 @@ package com.rbccm.database.tools;
 
 import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.Path;
 import org.apache.parquet.avro.AvroParquetReader;
 import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.util.HadoopInputFile;
@@ -16,11 +15,16 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.zip.CRC32C;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -55,13 +59,13 @@ public class CsvToParquetConverterTest {
         converter.convertCsvToParquet(csvFilePaths, outputDir);
 
         for (String csvPath : csvFilePaths) {
-            String parquetFileName = java.nio.file.Path.of(csvPath).getFileName().toString().replace(".csv", ".parquet");
-            String parquetFilePath = java.nio.file.Path.of(outputDir, parquetFileName).toString();
+            String parquetFileName = Path.of(csvPath).getFileName().toString().replace(".csv", ".parquet");
+            String parquetFilePath = Path.of(outputDir, parquetFileName).toString();
             File parquetFile = new File(parquetFilePath);
             assertTrue(parquetFile.exists(), "Parquet file should be created: " + parquetFilePath);
 
             try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(
-                    HadoopInputFile.fromPath(new Path(parquetFilePath), new Configuration())).build()) {
+                    HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(parquetFilePath), new Configuration())).build()) {
                 GenericRecord record = reader.read();
                 assertNotNull(record);
                 // Verify key fields
@@ -90,4 +94,39 @@ public class CsvToParquetConverterTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCrc32cChecksumStoredAlongsideOutput(@TempDir File tempDir) throws Exception {
+        assertChecksumsStored(converter, ChecksumOutputFile.Algorithm.CRC32C, tempDir);
+    }
+
+    @Test
+    void testSha256ChecksumStoredAlongsideOutput(@TempDir File tempDir) throws Exception {
+        assertChecksumsStored(new CsvToParquetConverter(schema, 128 * 1024 * 1024, 2, ChecksumOutputFile.Algorithm.SHA256),
+                ChecksumOutputFile.Algorithm.SHA256, tempDir);
+    }
+
+    private void assertChecksumsStored(CsvToParquetConverter converter, ChecksumOutputFile.Algorithm algorithm,
+                                       File tempDir) throws Exception {
+        String outputDir = new File(tempDir, "output").getAbsolutePath();
+        converter.convertCsvToParquet(csvFilePaths, outputDir);
+
+        for (String csvPath : csvFilePaths) {
+            String parquetFileName = Path.of(csvPath).getFileName().toString().replace(".csv", ".parquet");
+            Path parquetPath = Path.of(outputDir, parquetFileName);
+            ChecksumOutputFile.StoredChecksum checksum = ChecksumOutputFile.readSidecar(parquetPath);
+            assertNotNull(checksum, "Checksum should be stored next to " + parquetPath);
+            assertEquals(algorithm, checksum.getAlgorithm());
+            assertEquals(expectedChecksum(algorithm, Files.readAllBytes(parquetPath)), checksum.getValue());
+        }
+    }
+
+    private static String expectedChecksum(ChecksumOutputFile.Algorithm algorithm, byte[] content) throws Exception {
+        if (algorithm == ChecksumOutputFile.Algorithm.SHA256) {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+}
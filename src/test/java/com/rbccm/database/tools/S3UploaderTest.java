@@ -3,28 +3,57 @@ package com.rbccm.database.tools;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+import software.amazon.awssdk.services.s3.model.Part;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 import software.amazon.awssdk.core.sync.RequestBody;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
+import java.util.zip.CRC32C;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 public class S3UploaderTest {
+    private static final long PART_SIZE = 5L * 1024 * 1024;
     private S3Client mockS3Client;
     private S3Uploader uploader;
     private Properties mockConfig;
+    private Path journalPath;
 
     @BeforeEach
-    void setUp() {
+    void setUp(@TempDir File tempDir) {
         mockS3Client = mock(S3Client.class);
         mockConfig = new Properties();
 
@@ -33,9 +62,17 @@ public class S3UploaderTest {
         mockConfig.setProperty("s3.secretKey", "test-secret-key");
         mockConfig.setProperty("s3.endpoint", "https://test-endpoint:9000");
         mockConfig.setProperty("s3.region", "test-region");
+        journalPath = new File(tempDir, "journal.json").toPath();
+        mockConfig.setProperty("s3.journalPath", journalPath.toString());
+        when(mockS3Client.listMultipartUploads(any(ListMultipartUploadsRequest.class)))
+                .thenReturn(ListMultipartUploadsResponse.builder().isTruncated(false).build());
 
+        uploader = createUploader();
+    }
+
+    private S3Uploader createUploader() {
         // Use reflection to inject mock S3Client
-        uploader = new S3Uploader(2, mockConfig) {
+        return new S3Uploader(2, mockConfig) {
             {
                 try {
                     java.lang.reflect.Field s3ClientField = S3Uploader.class.getDeclaredField("s3Client");
@@ -65,4 +102,393 @@ public class S3UploaderTest {
 
         verify(mockS3Client, times(filePaths.size())).putObject(any(PutObjectRequest.class), any(RequestBody.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUploadSendsStoredChecksum(@TempDir File tempDir) throws IOException, InterruptedException {
+        Path file = new File(tempDir, "test1.parquet").toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        ChecksumOutputFile.writeSidecar(file, ChecksumOutputFile.Algorithm.CRC32C, "c3VtPQ==");
+        when(mockS3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<PutObjectRequest> requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(mockS3Client).putObject(requestCaptor.capture(), any(RequestBody.class));
+        assertEquals("c3VtPQ==", requestCaptor.getValue().checksumCRC32C());
+        assertEquals("test-prefix/test1.parquet", requestCaptor.getValue().key());
+    }
+
+    @Test
+    void testResumeMultipartUpload(@TempDir File tempDir) throws IOException, InterruptedException {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+
+        Path file = new File(tempDir, "large.parquet").toPath();
+        Files.write(file, new byte[(int) (2 * PART_SIZE + 2 * 1024 * 1024)]);
+        UploadJournal.Entry entry = new UploadJournal.Entry("test-bucket", "test-prefix/large.parquet", "upload-1",
+                Files.size(file), S3Uploader.fingerprint(file), PART_SIZE, null);
+        entry.parts.put(1, "etag-1");
+        new UploadJournal(journalPath).put(file.toAbsolutePath().toString(), entry);
+        uploader = createUploader();
+
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(ListPartsResponse.builder()
+                .parts(Part.builder().partNumber(1).eTag("etag-1").size(PART_SIZE).build())
+                .isTruncated(false)
+                .build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-n").build());
+        when(mockS3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(mockS3Client, times(2)).uploadPart(partCaptor.capture(), any(RequestBody.class));
+        assertEquals(Arrays.asList(2, 3), Arrays.asList(
+                partCaptor.getAllValues().get(0).partNumber(), partCaptor.getAllValues().get(1).partNumber()));
+        assertEquals(2L * 1024 * 1024, partCaptor.getAllValues().get(1).contentLength());
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+        assertEquals("upload-1", completeCaptor.getValue().uploadId());
+        assertEquals(3, completeCaptor.getValue().multipartUpload().parts().size());
+        verify(mockS3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        assertTrue(new UploadJournal(journalPath).snapshot().isEmpty());
+    }
+
+    @Test
+    void testChangedContentWithoutChecksumStartsOver(@TempDir File tempDir) throws IOException, InterruptedException {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+
+        Path file = new File(tempDir, "large.parquet").toPath();
+        byte[] content = new byte[(int) (2 * PART_SIZE + 2 * 1024 * 1024)];
+        Files.write(file, content);
+        UploadJournal.Entry entry = new UploadJournal.Entry("test-bucket", "test-prefix/large.parquet", "upload-old",
+                content.length, S3Uploader.fingerprint(file), PART_SIZE, null);
+        entry.parts.put(1, "etag-1");
+        new UploadJournal(journalPath).put(file.toAbsolutePath().toString(), entry);
+        // Same size, different bytes in the middle of the file
+        content[(int) PART_SIZE + 17] = 1;
+        Files.write(file, content);
+        uploader = createUploader();
+        when(mockS3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-new").build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-n").build());
+        when(mockS3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<AbortMultipartUploadRequest> abortCaptor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(mockS3Client).abortMultipartUpload(abortCaptor.capture());
+        assertEquals("upload-old", abortCaptor.getValue().uploadId());
+        verify(mockS3Client, never()).listParts(any(ListPartsRequest.class));
+        verify(mockS3Client, times(3)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+        assertEquals("upload-new", completeCaptor.getValue().uploadId());
+    }
+
+    @Test
+    void testAbortOrphanedMultipartUpload(@TempDir File tempDir) throws IOException, InterruptedException {
+        String missingFile = new File(tempDir, "deleted.parquet").getAbsolutePath();
+        new UploadJournal(journalPath).put(missingFile,
+                new UploadJournal.Entry("test-bucket", "test-prefix/deleted.parquet", "upload-2", 10, "FILE-CRC32C:AAAAAA==", PART_SIZE, null));
+        uploader = createUploader();
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.emptyList());
+
+        ArgumentCaptor<AbortMultipartUploadRequest> abortCaptor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(mockS3Client).abortMultipartUpload(abortCaptor.capture());
+        assertEquals("upload-2", abortCaptor.getValue().uploadId());
+        assertTrue(new UploadJournal(journalPath).snapshot().isEmpty());
+    }
+
+    @Test
+    void testAbortUntrackedMultipartUpload(@TempDir File tempDir) throws IOException, InterruptedException {
+        Path file = new File(tempDir, "crashed.parquet").toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        new UploadJournal(journalPath).put(file.toAbsolutePath().toString(), new UploadJournal.Entry("test-bucket",
+                "test-prefix/crashed.parquet", "upload-tracked", 3, S3Uploader.fingerprint(file), PART_SIZE, null));
+        uploader = createUploader();
+        Instant stale = Instant.now().minus(Duration.ofDays(2));
+        when(mockS3Client.listMultipartUploads(any(ListMultipartUploadsRequest.class))).thenReturn(ListMultipartUploadsResponse.builder()
+                .uploads(MultipartUpload.builder().key("test-prefix/crashed.parquet").uploadId("upload-tracked").initiated(stale).build(),
+                        MultipartUpload.builder().key("test-prefix/crashed.parquet").uploadId("upload-stale").initiated(stale).build(),
+                        MultipartUpload.builder().key("test-prefix/crashed.parquet").uploadId("upload-fresh").initiated(Instant.now()).build(),
+                        MultipartUpload.builder().key("test-prefix/other-writer.parquet").uploadId("upload-other").initiated(stale).build())
+                .isTruncated(false)
+                .build());
+        when(mockS3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<ListMultipartUploadsRequest> listCaptor = ArgumentCaptor.forClass(ListMultipartUploadsRequest.class);
+        verify(mockS3Client).listMultipartUploads(listCaptor.capture());
+        assertEquals("test-prefix/", listCaptor.getValue().prefix());
+        // Only the stale, untracked upload for a key in this batch is swept; fresh uploads and other keys belong to other writers
+        ArgumentCaptor<AbortMultipartUploadRequest> abortCaptor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(mockS3Client).abortMultipartUpload(abortCaptor.capture());
+        assertEquals("upload-stale", abortCaptor.getValue().uploadId());
+        assertEquals("test-prefix/crashed.parquet", abortCaptor.getValue().key());
+    }
+
+    @Test
+    void testMultipartUploadSendsPartChecksums(@TempDir File tempDir) throws IOException, InterruptedException {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+        uploader = createUploader();
+
+        Path file = new File(tempDir, "large.parquet").toPath();
+        byte[] content = new byte[(int) (PART_SIZE + 1024 * 1024)];
+        new Random(7).nextBytes(content);
+        Files.write(file, content);
+        ChecksumOutputFile.writeSidecar(file, ChecksumOutputFile.Algorithm.CRC32C, crc32c(content, 0, content.length));
+        when(mockS3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-4").build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-1").build())
+                .thenReturn(UploadPartResponse.builder().eTag("etag-2").build());
+        when(mockS3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<CreateMultipartUploadRequest> createCaptor = ArgumentCaptor.forClass(CreateMultipartUploadRequest.class);
+        verify(mockS3Client).createMultipartUpload(createCaptor.capture());
+        assertEquals(ChecksumAlgorithm.CRC32_C, createCaptor.getValue().checksumAlgorithm());
+        String part1 = crc32c(content, 0, (int) PART_SIZE);
+        String part2 = crc32c(content, (int) PART_SIZE, content.length - (int) PART_SIZE);
+        ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(mockS3Client, times(2)).uploadPart(partCaptor.capture(), any(RequestBody.class));
+        assertEquals(part1, partCaptor.getAllValues().get(0).checksumCRC32C());
+        assertEquals(part2, partCaptor.getAllValues().get(1).checksumCRC32C());
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+        List<CompletedPart> completedParts = completeCaptor.getValue().multipartUpload().parts();
+        assertEquals(Arrays.asList(part1, part2),
+                Arrays.asList(completedParts.get(0).checksumCRC32C(), completedParts.get(1).checksumCRC32C()));
+        assertEquals("etag-2", completedParts.get(1).eTag());
+    }
+
+    @Test
+    void testResumeResendsPartThatDoesNotMatchLocalFile(@TempDir File tempDir) throws IOException, InterruptedException {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+
+        Path file = new File(tempDir, "large.parquet").toPath();
+        byte[] content = new byte[(int) (PART_SIZE + 1024 * 1024)];
+        new Random(13).nextBytes(content);
+        Files.write(file, content);
+        ChecksumOutputFile.writeSidecar(file, ChecksumOutputFile.Algorithm.CRC32C, crc32c(content, 0, content.length));
+        new UploadJournal(journalPath).put(file.toAbsolutePath().toString(), new UploadJournal.Entry("test-bucket",
+                "test-prefix/large.parquet", "upload-6", content.length, S3Uploader.fingerprint(file), PART_SIZE,
+                ChecksumOutputFile.Algorithm.CRC32C));
+        uploader = createUploader();
+
+        // Part 1 was sent corrupted by an earlier run; part 2 matches the local file
+        String part1 = crc32c(content, 0, (int) PART_SIZE);
+        String part2 = crc32c(content, (int) PART_SIZE, content.length - (int) PART_SIZE);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(ListPartsResponse.builder()
+                .parts(Part.builder().partNumber(1).eTag("etag-bad").size(PART_SIZE).checksumCRC32C("AAAAAA==").build(),
+                        Part.builder().partNumber(2).eTag("etag-2").size((long) content.length - PART_SIZE).checksumCRC32C(part2).build())
+                .isTruncated(false)
+                .build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-1").build());
+        when(mockS3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(mockS3Client).uploadPart(partCaptor.capture(), any(RequestBody.class));
+        assertEquals(1, partCaptor.getValue().partNumber());
+        assertEquals(part1, partCaptor.getValue().checksumCRC32C());
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+        List<CompletedPart> completedParts = completeCaptor.getValue().multipartUpload().parts();
+        assertEquals(Arrays.asList("etag-1", "etag-2"), Arrays.asList(completedParts.get(0).eTag(), completedParts.get(1).eTag()));
+        assertEquals(part1, completedParts.get(0).checksumCRC32C());
+    }
+
+    @Test
+    void testResumeTakesPartChecksumsFromListParts(@TempDir File tempDir) throws IOException, InterruptedException {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+
+        Path file = new File(tempDir, "large.parquet").toPath();
+        byte[] content = new byte[(int) (2 * PART_SIZE + 1024 * 1024)];
+        new Random(11).nextBytes(content);
+        Files.write(file, content);
+        ChecksumOutputFile.writeSidecar(file, ChecksumOutputFile.Algorithm.CRC32C, crc32c(content, 0, content.length));
+        UploadJournal.Entry entry = new UploadJournal.Entry("test-bucket", "test-prefix/large.parquet", "upload-5",
+                content.length, S3Uploader.fingerprint(file), PART_SIZE, ChecksumOutputFile.Algorithm.CRC32C);
+        new UploadJournal(journalPath).put(file.toAbsolutePath().toString(), entry);
+        uploader = createUploader();
+
+        // Part 2 has no checksum on S3, so it cannot be completed under a CRC32C upload and is re-sent
+        String part1 = crc32c(content, 0, (int) PART_SIZE);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(ListPartsResponse.builder()
+                .parts(Part.builder().partNumber(1).eTag("etag-1").size(PART_SIZE).checksumCRC32C(part1).build(),
+                        Part.builder().partNumber(2).eTag("etag-2").size(PART_SIZE).build())
+                .isTruncated(false)
+                .build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-n").build());
+        when(mockS3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        uploader.uploadToS3("test-bucket", "test-prefix", Collections.singletonList(file.toString()));
+
+        ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(mockS3Client, times(2)).uploadPart(partCaptor.capture(), any(RequestBody.class));
+        assertEquals(2, partCaptor.getAllValues().get(0).partNumber());
+        assertEquals(crc32c(content, (int) PART_SIZE, (int) PART_SIZE), partCaptor.getAllValues().get(0).checksumCRC32C());
+        assertEquals(3, partCaptor.getAllValues().get(1).partNumber());
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+        List<CompletedPart> completedParts = completeCaptor.getValue().multipartUpload().parts();
+        assertEquals(3, completedParts.size());
+        assertEquals(part1, completedParts.get(0).checksumCRC32C());
+        assertEquals("etag-1", completedParts.get(0).eTag());
+        assertEquals(partCaptor.getAllValues().get(0).checksumCRC32C(), completedParts.get(1).checksumCRC32C());
+        assertEquals("etag-n", completedParts.get(1).eTag());
+        verify(mockS3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void testMultipartChecksumMismatchAborts(@TempDir File tempDir) throws IOException {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+        uploader = createUploader();
+
+        // The recorded checksum no longer matches the bytes on disk
+        Path file = new File(tempDir, "corrupt.parquet").toPath();
+        Files.write(file, new byte[(int) (PART_SIZE + 1024 * 1024)]);
+        ChecksumOutputFile.writeSidecar(file, ChecksumOutputFile.Algorithm.CRC32C, "AAAAAA==");
+        when(mockS3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-3").build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-n").build());
+
+        assertThrows(IOException.class, () -> uploader.uploadToS3("test-bucket", "test-prefix",
+                Collections.singletonList(file.toString())));
+
+        verify(mockS3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        ArgumentCaptor<AbortMultipartUploadRequest> abortCaptor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(mockS3Client).abortMultipartUpload(abortCaptor.capture());
+        assertEquals("upload-3", abortCaptor.getValue().uploadId());
+        assertTrue(new UploadJournal(journalPath).snapshot().isEmpty());
+    }
+
+    @Test
+    void testTimeoutFailsUpload(@TempDir File tempDir) throws IOException {
+        mockConfig.setProperty("s3.uploadTimeoutSeconds", "1");
+        uploader = createUploader();
+        Path file = new File(tempDir, "slow.parquet").toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        when(mockS3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            Thread.sleep(60_000);
+            return PutObjectResponse.builder().build();
+        });
+
+        assertThrows(IOException.class, () -> uploader.uploadToS3("test-bucket", "test-prefix",
+                Collections.singletonList(file.toString())));
+    }
+
+    @Test
+    void testPartSizeWithinS3Limits() throws IOException {
+        mockConfig.setProperty("s3.partSize", "4");
+        assertThrows(IllegalStateException.class, this::createUploader);
+        mockConfig.setProperty("s3.partSize", String.valueOf(6L * 1024 * 1024 * 1024));
+        assertThrows(IllegalStateException.class, this::createUploader);
+
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+        S3Uploader limited = createUploader();
+        assertEquals(PART_SIZE, limited.partSizeFor(10_000 * PART_SIZE));
+        // One byte more than 10,000 parts can hold raises the part size to the next whole MiB
+        assertEquals(PART_SIZE + 1024 * 1024, limited.partSizeFor(10_000 * PART_SIZE + 1));
+        assertThrows(IOException.class, () -> limited.partSizeFor(10_000L * 2048 * 1024 * 1024));
+    }
+
+    @Test
+    void testResumeAfterReconversion(@TempDir File tempDir) throws Exception {
+        mockConfig.setProperty("s3.multipartThreshold", String.valueOf(PART_SIZE));
+        mockConfig.setProperty("s3.partSize", String.valueOf(PART_SIZE));
+
+        // Random text keeps the Parquet output above two parts after Snappy compression
+        String csvPath = new File(tempDir, "large.csv").getAbsolutePath();
+        Random random = new Random(42);
+        try (FileWriter writer = new FileWriter(csvPath)) {
+            writer.write("id,name,age,amount,birth_date,description,large_count,transaction_date,flag,code,account_id,big_number,huge_number,currency_code,event_timestamp,massive_count,quantity,notes,address,email,phone,order_id,status,city,balance,total,comments,uuid\n");
+            for (int i = 0; i < 13000; i++) {
+                writer.write(i + "," + randomHex(random, 80) + ",25,1234.56,1990-01-01," + randomHex(random, 80)
+                        + ",1000000,2023-01-01,1," + randomHex(random, 80) + ",1234567890,9876543210,1234567890,"
+                        + randomHex(random, 80) + ",2023-01-01 12:00:00.123456789,1122334455,100," + randomHex(random, 80)
+                        + "," + randomHex(random, 80) + "," + randomHex(random, 80) + "," + randomHex(random, 80)
+                        + ",5001," + randomHex(random, 80) + "," + randomHex(random, 80) + ",500000,987654.32,"
+                        + randomHex(random, 80) + "," + randomHex(random, 80) + "\n");
+            }
+        }
+        String outputDir = new File(tempDir, "output").getAbsolutePath();
+        CsvToParquetConverter converter = new CsvToParquetConverter(SchemaLoader.loadSchema("schema.json"), 128 * 1024 * 1024, 1);
+        List<String> parquetFiles = Collections.singletonList(Path.of(outputDir, "large.parquet").toString());
+
+        // First run dies after the first part
+        converter.convertCsvToParquet(Collections.singletonList(csvPath), outputDir);
+        long parquetSize = Files.size(Path.of(parquetFiles.get(0)));
+        assertTrue(parquetSize > 10 * 1024 * 1024, "Parquet output too small for three parts: " + parquetSize);
+        when(mockS3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-e2e").build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-1").build())
+                .thenThrow(SdkClientException.create("Connection reset"));
+        assertThrows(IOException.class, () -> createUploader().uploadToS3("test-bucket", "test-prefix", parquetFiles));
+        UploadJournal.Entry journaled = new UploadJournal(journalPath).get(Path.of(parquetFiles.get(0)).toAbsolutePath().toString());
+        assertEquals(Collections.singleton(1), journaled.parts.keySet());
+
+        // Second run reconverts the same CSV before uploading, as Main does
+        converter.convertCsvToParquet(Collections.singletonList(csvPath), outputDir);
+        clearInvocations(mockS3Client);
+        when(mockS3Client.listParts(any(ListPartsRequest.class))).thenReturn(ListPartsResponse.builder()
+                .parts(Part.builder().partNumber(1).eTag("etag-1").size(PART_SIZE)
+                        .checksumCRC32C(journaled.partChecksums.get(1)).build())
+                .isTruncated(false)
+                .build());
+        when(mockS3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-n").build());
+        when(mockS3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        createUploader().uploadToS3("test-bucket", "test-prefix", parquetFiles);
+
+        verify(mockS3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(mockS3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(mockS3Client, times(2)).uploadPart(partCaptor.capture(), any(RequestBody.class));
+        assertEquals(2, partCaptor.getAllValues().get(0).partNumber());
+        assertEquals(3, partCaptor.getAllValues().get(1).partNumber());
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(mockS3Client).completeMultipartUpload(completeCaptor.capture());
+        assertEquals("upload-e2e", completeCaptor.getValue().uploadId());
+        assertTrue(new UploadJournal(journalPath).snapshot().isEmpty());
+    }
+
+    private static String crc32c(byte[] content, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(content, offset, length);
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+    private static String randomHex(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+}